@@ -6,18 +6,26 @@ import org.jdom.CDATA;
 import org.jdom.Comment;
 import org.jdom.Element;
 import org.jdom.EntityRef;
+import org.jdom.IllegalDataException;
 import org.jdom.Namespace;
 import org.jdom.ProcessingInstruction;
 import org.jdom.Text;
 import org.jdom.Verifier;
+import org.jdom.output.EscapeStrategy;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 public class AndroidXmlOutputter extends XMLOutputter {
     final String[] namespaceOrder;
@@ -25,6 +33,8 @@ public class AndroidXmlOutputter extends XMLOutputter {
     final int attributeIndention;
     final boolean alphabeticalAttributes;
     final boolean alphabeticalNamespaces;
+    private FormattingListener listener = FormattingListener.NONE;
+    private int parallelThreshold = 0;
 
     public AndroidXmlOutputter(int indention, int attributeIndention,
             String[] namespaceOrder, String[] attributeNameOrder,
@@ -42,6 +52,19 @@ public class AndroidXmlOutputter extends XMLOutputter {
         setFormat(format);
     }
 
+    public void setFormattingListener(FormattingListener listener) {
+        this.listener = listener != null ? listener : FormattingListener.NONE;
+    }
+
+    /**
+     * Renders the children of the root element in parallel if it has at least this many child
+     * nodes other than text. The output is the same as when rendering sequentially. 0 disables
+     * parallel rendering.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
     static private int elementDepth(Element element) {
         int result = 0;
         while (element != null) {
@@ -221,6 +244,102 @@ public class AndroidXmlOutputter extends XMLOutputter {
         }
     }
 
+    /**
+     * Splits the content of the root element into chunks that are rendered into separate buffers
+     * by clones of this outputter, and writes the buffers in order. Chunks only start at non-text
+     * nodes, where printContentRange would write a line break before the node, so the result is
+     * identical to rendering the whole range at once. Only a few chunks are rendered ahead of the
+     * one being written, so the buffered output stays small. Listener callbacks of each chunk are
+     * recorded and replayed in order on the calling thread.
+     */
+    private void printContentRangeParallel(Writer out, Element root, List content, int start,
+            int end, int level) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int chunkSize = Math.max(1, (end - start) / (parallelism * 4));
+        Deque<ForkJoinTask<RenderedChunk>> inFlight = new ArrayDeque<>();
+        int chunkStart = start;
+        while (chunkStart < end || !inFlight.isEmpty()) {
+            while (chunkStart < end && inFlight.size() < parallelism * 2) {
+                int from = chunkStart;
+                int to = Math.min(nextNonText(content, chunkStart + chunkSize), end);
+                inFlight.add(ForkJoinTask.adapt(
+                        () -> renderChunk(root, content, from, to, level, from != start)).fork());
+                chunkStart = to;
+            }
+
+            RenderedChunk chunk;
+            try {
+                chunk = inFlight.poll().join();
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            out.write(chunk.output);
+            for (Consumer<FormattingListener> callback : chunk.callbacks) {
+                callback.accept(listener);
+            }
+        }
+    }
+
+    private RenderedChunk renderChunk(Element root, List content, int from, int to, int level,
+            boolean leadingNewline) throws IOException {
+        AndroidXmlOutputter outputter = (AndroidXmlOutputter) this.clone();
+        RenderedChunk chunk = new RenderedChunk();
+        if (listener != FormattingListener.NONE) {
+            outputter.listener = chunk;
+        }
+        StringWriter writer = new StringWriter();
+        if (leadingNewline) {
+            outputter.newline(writer);
+        }
+        outputter.printContentRange(writer, content, from, to, level,
+                outputter.rootNamespaceScope(root));
+        chunk.output = writer.toString();
+        return chunk;
+    }
+
+    private static int countNonText(List content) {
+        int count = 0;
+        for (Object node : content) {
+            if (!(node instanceof Text) && !(node instanceof EntityRef)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Output of a chunk rendered in parallel, together with the listener callbacks it made.
+     */
+    private static class RenderedChunk implements FormattingListener {
+        final List<Consumer<FormattingListener>> callbacks = new ArrayList<>();
+        String output;
+
+        @Override
+        public void attributesReordered(Element element, List<Attribute> attributes) {
+            callbacks.add(listener -> listener.attributesReordered(element, attributes));
+        }
+
+        @Override
+        public void elementRendered(Element element, int level) {
+            callbacks.add(listener -> listener.elementRendered(element, level));
+        }
+    }
+
+    /**
+     * Namespaces in scope for the content of the root element, replayed from its declarations.
+     */
+    private NamespaceStack rootNamespaceScope(Element root) throws IOException {
+        NamespaceStack namespaces = new NamespaceStack() {
+        };
+        Writer discarded = new StringWriter();
+        this.printElementNamespace(discarded, root, namespaces);
+        this.printAdditionalNamespaces(discarded, root, namespaces);
+        return namespaces;
+    }
+
     private void printString(Writer out, String str) throws IOException {
         if (this.currentFormat.getTextMode() == Format.TextMode.NORMALIZE) {
             str = Text.normalizeString(str);
@@ -319,7 +438,12 @@ public class AndroidXmlOutputter extends XMLOutputter {
             newline(out);
             if (nextNonText(content, start) < size) {
                 this.newline(out);
-                this.printContentRange(out, content, start, size, level + 1, namespaces);
+                if (level == 0 && parallelThreshold > 0
+                        && countNonText(content) >= parallelThreshold) {
+                    this.printContentRangeParallel(out, element, content, start, size, level + 1);
+                } else {
+                    this.printContentRange(out, content, start, size, level + 1, namespaces);
+                }
                 this.newline(out);
                 this.indent(out, level);
             } else {
@@ -337,6 +461,7 @@ public class AndroidXmlOutputter extends XMLOutputter {
 
         this.currentFormat = previousFormat;
         newline(out);
+        listener.elementRendered(element, level);
     }
 
     private void newline(Writer out) throws IOException {
@@ -357,32 +482,9 @@ public class AndroidXmlOutputter extends XMLOutputter {
             attributes.add((Attribute) attribObj);
         }
 
-        Collections.sort(attributes, (a1, a2) -> {
-            if (!a1.getNamespacePrefix().equals(a2.getNamespacePrefix())) {
-                for (String namespace : namespaceOrder) {
-                    if (a1.getNamespacePrefix().equals(namespace)) {
-                        return -1;
-                    } else if (a2.getNamespacePrefix().equals(namespace)) {
-                        return 1;
-                    }
-                }
-                if (alphabeticalNamespaces) {
-                    return a1.getNamespacePrefix().compareTo(a2.getNamespacePrefix());
-                }
-            }
-            for (String name : attributeNameOrder) {
-                if (a1.getName().equals(name)) {
-                    return -1;
-                } else if (a2.getName().equals(name)) {
-                    return 1;
-                }
-            }
-            if (alphabeticalAttributes) {
-                return a1.getName().compareTo(a2.getName());
-            } else {
-                return 0; // Sort is stable
-            }
-        });
+        Collections.sort(attributes, (a1, a2) -> compareAttributes(a1.getNamespacePrefix(),
+                a1.getName(), a2.getNamespacePrefix(), a2.getName()));
+        listener.attributesReordered(parent, attributes);
 
         for (Attribute attrib : attributes) {
             if (attributeIndention > 0) {
@@ -396,11 +498,105 @@ public class AndroidXmlOutputter extends XMLOutputter {
             printQualifiedName(writer, attrib);
             writer.write("=");
             writer.write("\"");
-            writer.write(escapeAttributeEntities(attrib.getValue()));
+            printAttributeValue(writer, attrib.getValue());
             writer.write("\"");
         }
     }
 
+    /**
+     * Order of attributes, given by their namespace prefix and local name.
+     */
+    int compareAttributes(String prefix1, String name1, String prefix2, String name2) {
+        if (!prefix1.equals(prefix2)) {
+            for (String namespace : namespaceOrder) {
+                if (prefix1.equals(namespace)) {
+                    return -1;
+                } else if (prefix2.equals(namespace)) {
+                    return 1;
+                }
+            }
+            if (alphabeticalNamespaces) {
+                return prefix1.compareTo(prefix2);
+            }
+        }
+        for (String name : attributeNameOrder) {
+            if (name1.equals(name)) {
+                return -1;
+            } else if (name2.equals(name)) {
+                return 1;
+            }
+        }
+        if (alphabeticalAttributes) {
+            return name1.compareTo(name2);
+        } else {
+            return 0; // Sort is stable
+        }
+    }
+
+    /**
+     * Escapes like {@link #escapeAttributeEntities(String)}, but writes the unchanged ranges
+     * between escaped characters straight to the writer instead of building an escaped copy of
+     * the whole value. Vector drawable pathData values can be hundreds of kilobytes long.
+     */
+    void printAttributeValue(Writer out, String value) throws IOException {
+        EscapeStrategy strategy = this.currentFormat.getEscapeStrategy();
+        int length = value.length();
+        int unwritten = 0;
+        for (int i = 0; i < length; ++i) {
+            char ch = value.charAt(i);
+            int start = i;
+            String entity;
+            switch (ch) {
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '\r':
+                    entity = "&#xD;";
+                    break;
+                case '\t':
+                    entity = "&#x9;";
+                    break;
+                case '\n':
+                    entity = "&#xA;";
+                    break;
+                default:
+                    if (!strategy.shouldEscape(ch)) {
+                        continue;
+                    }
+                    int codePoint = ch;
+                    if (Verifier.isHighSurrogate(ch)) {
+                        ++i;
+                        if (i >= length) {
+                            throw new IllegalDataException("Surrogate pair 0x"
+                                    + Integer.toHexString(ch) + " truncated");
+                        }
+                        char low = value.charAt(i);
+                        if (!Verifier.isLowSurrogate(low)) {
+                            throw new IllegalDataException("Could not decode surrogate pair 0x"
+                                    + Integer.toHexString(ch) + " / 0x"
+                                    + Integer.toHexString(low));
+                        }
+                        codePoint = Verifier.decodeSurrogatePair(ch, low);
+                    }
+                    entity = "&#x" + Integer.toHexString(codePoint) + ";";
+                    break;
+            }
+            out.write(value, unwritten, start - unwritten);
+            out.write(entity);
+            unwritten = i + 1;
+        }
+        out.write(value, unwritten, length - unwritten);
+    }
+
     private void printQualifiedName(Writer out, Attribute a) throws IOException {
         String prefix = a.getNamespace().getPrefix();
         if (prefix != null && !prefix.equals("")) {
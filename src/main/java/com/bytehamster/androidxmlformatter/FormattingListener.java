@@ -0,0 +1,43 @@
+package com.bytehamster.androidxmlformatter;
+
+import org.jdom.Attribute;
+import org.jdom.Document;
+import org.jdom.Element;
+
+import java.util.List;
+
+/**
+ * Callbacks for observing the formatter while it runs, e.g. when it is embedded in a long-lived
+ * process. All methods do nothing by default, so implementations only override what they need.
+ * {@link #NONE} is used when no listener is set. Callbacks for a file are made on the thread that
+ * formats it and in document order, also when its elements are rendered in parallel.
+ */
+public interface FormattingListener {
+    FormattingListener NONE = new FormattingListener() {
+    };
+
+    default void fileStarted(String filename) {
+    }
+
+    /**
+     * Called after the file was checked and, if needed, parsed. The document is {@code null} if
+     * the streaming check already decided the file, in which case no element callbacks follow.
+     */
+    default void parseFinished(String filename, Document document) {
+    }
+
+    /**
+     * Called with the attributes of an element in the order they are about to be written.
+     */
+    default void attributesReordered(Element element, List<Attribute> attributes) {
+    }
+
+    default void elementRendered(Element element, int level) {
+    }
+
+    default void renderFinished(String filename) {
+    }
+
+    default void fileFinished(String filename) {
+    }
+}
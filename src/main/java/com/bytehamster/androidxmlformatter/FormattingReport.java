@@ -0,0 +1,154 @@
+package com.bytehamster.androidxmlformatter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a formatting run with one line per file, so that the reports of several shards can
+ * be merged into a single pass/fail summary. The first line names the shard and its base
+ * directory, e.g. {@code # shard 2/4 base /work/app}, so that merging can tell whether the
+ * reports of all shards are there.
+ */
+public class FormattingReport {
+    public enum Status {
+        /** The file was already formatted. */
+        FORMATTED,
+        /** The file was not formatted and has been re-written. */
+        REFORMATTED,
+        /** The file is not formatted and was left untouched. */
+        NOT_FORMATTED
+    }
+
+    private static final String HEADER_PREFIX = "# shard ";
+    private static final String HEADER_BASE = " base ";
+
+    final Shard shard;
+    private final Map<String, Status> results = new TreeMap<>();
+
+    /**
+     * @param shard the shard this run processed, 1/1 if it was not sharded
+     */
+    public FormattingReport(Shard shard) {
+        this.shard = shard;
+    }
+
+    public synchronized void add(String filename, Status status) {
+        results.put(filename, status);
+    }
+
+    public synchronized void addAll(FormattingReport other) {
+        results.putAll(other.results);
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Files that were not formatted before this run, whether they were re-written or not.
+     */
+    public synchronized List<String> failedFiles() {
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Status> entry : results.entrySet()) {
+            if (entry.getValue() != Status.FORMATTED) {
+                failed.add(entry.getKey());
+            }
+        }
+        return failed;
+    }
+
+    public boolean passed() {
+        return failedFiles().isEmpty();
+    }
+
+    public synchronized void write(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER_PREFIX + shard.index + "/" + shard.count + HEADER_BASE + shard.base);
+        for (Map.Entry<String, Status> entry : results.entrySet()) {
+            lines.add(entry.getValue().name() + "\t" + entry.getKey());
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    public static FormattingReport read(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        String header = lines.isEmpty() ? "" : lines.get(0);
+        int baseStart = header.indexOf(HEADER_BASE);
+        if (!header.startsWith(HEADER_PREFIX) || baseStart < 0) {
+            throw new IOException("Missing shard header in report " + path);
+        }
+        FormattingReport report;
+        try {
+            report = new FormattingReport(Shard.parse(
+                    header.substring(HEADER_PREFIX.length(), baseStart),
+                    Paths.get(header.substring(baseStart + HEADER_BASE.length()))));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed shard header in report " + path + ": " + header);
+        }
+
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf('\t');
+            if (separator < 0) {
+                throw new IOException("Malformed line in report " + path + ": " + line);
+            }
+            try {
+                report.add(line.substring(separator + 1),
+                        Status.valueOf(line.substring(0, separator)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed line in report " + path + ": " + line);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Merges the reports of all shards of a run.
+     *
+     * @throws IllegalArgumentException if no reports are given, if they disagree on the number of
+     *         shards, or if a shard is missing or given more than once
+     */
+    public static FormattingReport merge(List<FormattingReport> reports) {
+        if (reports.isEmpty()) {
+            throw new IllegalArgumentException("No reports to merge");
+        }
+        int count = reports.get(0).shard.count;
+        FormattingReport[] byIndex = new FormattingReport[count];
+        for (FormattingReport report : reports) {
+            if (report.shard.count != count) {
+                throw new IllegalArgumentException("Reports disagree on the number of shards: "
+                        + count + " and " + report.shard.count);
+            }
+            if (byIndex[report.shard.index - 1] != null) {
+                throw new IllegalArgumentException("Report of shard " + report.shard.index + "/"
+                        + count + " given more than once");
+            }
+            byIndex[report.shard.index - 1] = report;
+        }
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (byIndex[i] == null) {
+                missing.add((i + 1) + "/" + count);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Missing reports of shards "
+                    + String.join(", ", missing));
+        }
+
+        FormattingReport merged = new FormattingReport(new Shard(1, 1, reports.get(0).shard.base));
+        for (FormattingReport report : reports) {
+            merged.addAll(report);
+        }
+        return merged;
+    }
+}
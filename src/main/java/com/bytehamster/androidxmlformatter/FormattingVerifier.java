@@ -0,0 +1,186 @@
+package com.bytehamster.androidxmlformatter;
+
+import org.jdom.Document;
+import org.jdom.output.XMLOutputter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Checks whether a file is already formatted. Instead of rendering the document into a buffer
+ * and comparing the bytes afterwards, the outputter writes into a writer that compares every
+ * character against the file content and aborts at the first difference.
+ *
+ * <p>{@link #check(AndroidXmlOutputter, InputStream, Reader)} does this without building a JDOM
+ * document, using {@link StreamingFormatter}. It is the fast first stage: only documents it cannot
+ * decide need to be parsed and checked with {@link #isFormatted(XMLOutputter, Document, Reader)}.
+ */
+public final class FormattingVerifier {
+    public enum Result {
+        FORMATTED,
+        NOT_FORMATTED,
+        /**
+         * The document contains content that only the JDOM path formats, or is not well-formed.
+         */
+        UNKNOWN
+    }
+
+    private FormattingVerifier() {
+    }
+
+    /**
+     * Checks the document read from {@code xml} against {@code content}, which is the same file
+     * read as UTF-8, in a single streaming pass. After a difference, the rest of the document is
+     * still read, so that malformed files are not reported as merely unformatted.
+     */
+    public static Result check(AndroidXmlOutputter outputter, InputStream xml, Reader content)
+            throws IOException {
+        MatchingWriter writer = new MatchingWriter(content, false);
+        try (Writer out = new TrailingNewlineWriter(writer)) {
+            new StreamingFormatter(outputter).format(xml, out);
+        } catch (XMLStreamException | StreamingFormatter.UnsupportedContentException e) {
+            return Result.UNKNOWN;
+        }
+        return writer.isComplete() ? Result.FORMATTED : Result.NOT_FORMATTED;
+    }
+
+    public static boolean isFormatted(XMLOutputter outputter, Document document, String content)
+            throws IOException {
+        return isFormatted(outputter, document, new StringReader(content));
+    }
+
+    /**
+     * Like {@link #isFormatted(XMLOutputter, Document, String)}, but reads the file content
+     * incrementally, so it does not need to be held in memory.
+     */
+    public static boolean isFormatted(XMLOutputter outputter, Document document, Reader content)
+            throws IOException {
+        if (outputter instanceof AndroidXmlOutputter) {
+            // Parallel rendering buffers ahead, which defeats stopping at the first difference
+            AndroidXmlOutputter sequential = (AndroidXmlOutputter) outputter.clone();
+            sequential.setParallelThreshold(0);
+            outputter = sequential;
+        }
+        MatchingWriter writer = new MatchingWriter(content, true);
+        try (Writer out = new TrailingNewlineWriter(writer)) {
+            outputter.output(document, out);
+        } catch (MismatchException e) {
+            return false;
+        }
+        return writer.isComplete();
+    }
+
+    private static class MismatchException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MismatchException() {
+            super(null, null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this; // Only used for control flow
+        }
+    }
+
+    private static class MatchingWriter extends Writer {
+        private final Reader content;
+        private final boolean stopAtMismatch;
+        private final char[] buffer = new char[8192];
+        private int position = 0;
+        private int limit = 0;
+        private boolean mismatch = false;
+
+        MatchingWriter(Reader content, boolean stopAtMismatch) {
+            this.content = content;
+            this.stopAtMismatch = stopAtMismatch;
+        }
+
+        private boolean fillBuffer() throws IOException {
+            while (position == limit) {
+                int read = content.read(buffer);
+                if (read < 0) {
+                    return false;
+                }
+                position = 0;
+                limit = read;
+            }
+            return true;
+        }
+
+        private void mismatch() throws IOException {
+            if (stopAtMismatch) {
+                throw new MismatchException();
+            }
+            mismatch = true;
+        }
+
+        boolean isComplete() throws IOException {
+            return !mismatch && !fillBuffer();
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (mismatch) {
+                return;
+            } else if (!fillBuffer() || buffer[position] != (char) c) {
+                mismatch();
+                return;
+            }
+            ++position;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int end = off + len;
+            while (off < end && !mismatch) {
+                if (!fillBuffer()) {
+                    mismatch();
+                    return;
+                }
+                int count = Math.min(end - off, limit - position);
+                if (Arrays.mismatch(buffer, position, position + count,
+                        cbuf, off, off + count) >= 0) {
+                    mismatch();
+                    return;
+                }
+                position += count;
+                off += count;
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            int end = off + len;
+            while (off < end && !mismatch) {
+                if (!fillBuffer()) {
+                    mismatch();
+                    return;
+                }
+                int count = Math.min(end - off, limit - position);
+                for (int i = 0; i < count; ++i) {
+                    if (buffer[position + i] != str.charAt(off + i)) {
+                        mismatch();
+                        return;
+                    }
+                }
+                position += count;
+                off += count;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
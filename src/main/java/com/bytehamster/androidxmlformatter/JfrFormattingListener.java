@@ -0,0 +1,74 @@
+package com.bytehamster.androidxmlformatter;
+
+import org.jdom.Document;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emits Java Flight Recorder events for the parse, render and write phase of each file. The
+ * events are only recorded while a recording is active, e.g. when started with
+ * {@code -XX:StartFlightRecording}.
+ */
+public class JfrFormattingListener implements FormattingListener {
+    private final ThreadLocal<FileEvent> currentEvent = new ThreadLocal<>();
+
+    @Category("Android XML Formatter")
+    abstract static class FileEvent extends Event {
+        @Label("File")
+        String file;
+    }
+
+    @Name("com.bytehamster.androidxmlformatter.Parse")
+    @Label("Parse XML")
+    static class ParseEvent extends FileEvent {
+    }
+
+    @Name("com.bytehamster.androidxmlformatter.Render")
+    @Label("Render XML")
+    static class RenderEvent extends FileEvent {
+    }
+
+    @Name("com.bytehamster.androidxmlformatter.Write")
+    @Label("Write XML")
+    static class WriteEvent extends FileEvent {
+    }
+
+    private void startEvent(FileEvent event, String filename) {
+        event.file = filename;
+        event.begin();
+        currentEvent.set(event);
+    }
+
+    private void commitEvent() {
+        FileEvent event = currentEvent.get();
+        if (event != null) {
+            event.commit();
+            currentEvent.remove();
+        }
+    }
+
+    @Override
+    public void fileStarted(String filename) {
+        startEvent(new ParseEvent(), filename);
+    }
+
+    @Override
+    public void parseFinished(String filename, Document document) {
+        commitEvent();
+        startEvent(new RenderEvent(), filename);
+    }
+
+    @Override
+    public void renderFinished(String filename) {
+        commitEvent();
+        startEvent(new WriteEvent(), filename);
+    }
+
+    @Override
+    public void fileFinished(String filename) {
+        commitEvent();
+    }
+}
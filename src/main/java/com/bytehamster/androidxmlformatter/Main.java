@@ -8,14 +8,32 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.jdom.Document;
 import org.jdom.input.SAXBuilder;
-import org.jdom.output.XMLOutputter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
+    private static final String STDIN_NAME = "-";
 
     public static void main(String[] args) throws Exception {
         Options options = new Options();
@@ -37,19 +55,83 @@ public class Main {
         options.addOption(Option.builder().longOpt("namespace-sort")
                 .desc("Sort namespaces.")
                 .build());
+        options.addOption(Option.builder().longOpt("parallel-threshold")
+                .desc("Render the children of the root element in parallel if it has at least"
+                        + " this many.")
+                .hasArg().build());
+        options.addOption(Option.builder().longOpt("memory-budget")
+                .desc("Process files in parallel within this memory budget in MB, largest first.")
+                .hasArg().build());
+        options.addOption(Option.builder().longOpt("stdin")
+                .desc("Read XML from standard input and write the formatted result to standard"
+                        + " output.")
+                .build());
+        options.addOption(Option.builder().longOpt("check")
+                .desc("Only check whether the files are formatted, do not modify them.")
+                .build());
+        options.addOption(Option.builder().longOpt("shard")
+                .desc("Only process the i-th of n shards, e.g. 2/4. Files are assigned by path.")
+                .hasArg().build());
+        options.addOption(Option.builder().longOpt("shard-base")
+                .desc("Directory that file paths are made relative to for sharding and reports."
+                        + " Defaults to the git top level.")
+                .hasArg().build());
+        options.addOption(Option.builder().longOpt("shard-by-size")
+                .desc("Balance the shards by file size instead of assigning files by path.")
+                .build());
+        options.addOption(Option.builder().longOpt("report")
+                .desc("Write the result of each file to this report file.")
+                .hasArg().build());
+        options.addOption(Option.builder().longOpt("merge-reports")
+                .desc("Merge the given report files into one summary instead of formatting.")
+                .build());
+        options.addOption(Option.builder().longOpt("jfr")
+                .desc("Emit Java Flight Recorder events for parsing, rendering and writing.")
+                .build());
 
         CommandLine cmd;
         try {
             cmd = new DefaultParser().parse(options, args);
         } catch (ParseException e) {
-            System.out.println(e.getMessage());
+            printUsage(options, e.getMessage());
+            return;
+        }
 
-            String jarPath = new File(Main.class
-                    .getProtectionDomain()
-                    .getCodeSource()
-                    .getLocation().toString()).getName();
-            new HelpFormatter().printHelp(jarPath + " [OPTIONS] <FILES>", options);
-            System.exit(1);
+        if (cmd.hasOption("merge-reports")) {
+            List<FormattingReport> reports = new ArrayList<>();
+            for (String filename : cmd.getArgList()) {
+                reports.add(FormattingReport.read(Paths.get(filename)));
+            }
+            FormattingReport merged;
+            try {
+                merged = FormattingReport.merge(reports);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+                return;
+            }
+            printSummary(merged);
+            if (!merged.passed()) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        FormattingListener listener = cmd.hasOption("jfr")
+                ? new JfrFormattingListener()
+                : FormattingListener.NONE;
+
+        if (cmd.hasOption("stdin")) {
+            listener.fileStarted(STDIN_NAME);
+            Document doc = new SAXBuilder().build(System.in);
+            listener.parseFinished(STDIN_NAME, doc);
+            AndroidXmlOutputter outputter = createOutputter(cmd);
+            outputter.setFormattingListener(listener);
+            try (Writer out = createWriter(System.out)) {
+                outputter.output(doc, out);
+                listener.renderFinished(STDIN_NAME);
+            }
+            listener.fileFinished(STDIN_NAME);
             return;
         }
 
@@ -57,21 +139,194 @@ public class Main {
             System.out.println("Empty list of files to re-format");
         }
 
-        for (String filename : cmd.getArgList()) {
-            Document doc = new SAXBuilder().build(new FileInputStream(filename));
-            XMLOutputter outputter = new AndroidXmlOutputter(
-                    Integer.parseInt(cmd.getOptionValue("indention", "4")),
-                    Integer.parseInt(cmd.getOptionValue("attribute-indention", "4")),
-                    cmd.getOptionValue("namespace-order", "android").split(","),
-                    cmd.getOptionValue("attribute-order", "id,layout_width,layout_height")
-                            .split(","),
-                    cmd.hasOption("attribute-sort"),
-                    cmd.hasOption("namespace-sort"));
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            outputter.output(doc, stream);
-            byte[] content = stream.toByteArray();
-            new FileOutputStream(filename).write(content, 0, content.length - 2); // Strip double
-                                                                                  // line break
+        List<String> filenames = cmd.getArgList();
+        Path base = cmd.hasOption("shard-base")
+                ? Paths.get(cmd.getOptionValue("shard-base"))
+                : Shard.defaultBase();
+        Shard shard = new Shard(1, 1, base);
+        if (cmd.hasOption("shard")) {
+            try {
+                shard = Shard.parse(cmd.getOptionValue("shard"), base);
+                filenames = cmd.hasOption("shard-by-size")
+                        ? shard.selectBalanced(filenames)
+                        : shard.select(filenames);
+            } catch (IllegalArgumentException e) {
+                printUsage(options, e.getMessage());
+                return;
+            }
+        }
+
+        boolean checkOnly = cmd.hasOption("check");
+        FormattingReport report = new FormattingReport(shard);
+        if (cmd.hasOption("memory-budget")) {
+            MemoryBudgetScheduler scheduler;
+            try {
+                long budget = Long.parseLong(cmd.getOptionValue("memory-budget")) * 1024 * 1024;
+                scheduler = new MemoryBudgetScheduler(budget,
+                        Runtime.getRuntime().availableProcessors());
+            } catch (IllegalArgumentException e) {
+                printUsage(options, "Invalid memory budget: " + e.getMessage());
+                return;
+            }
+            scheduler.run(filenames, (filename, lowMemory) -> processFile(filename, base, cmd,
+                    listener, report, checkOnly, lowMemory));
+        } else {
+            for (String filename : filenames) {
+                processFile(filename, base, cmd, listener, report, checkOnly, false);
+            }
+        }
+
+        if (cmd.hasOption("report")) {
+            report.write(Paths.get(cmd.getOptionValue("report")));
+        }
+        if (checkOnly && !report.passed()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Formats or checks a single file. It is first checked in a single streaming pass, and only
+     * parsed into a document if that cannot decide or the file needs to be rendered. The
+     * low-memory path does not hold the file content, a document or the rendered output in
+     * memory: it verifies against the file while reading it, and formats it in a second
+     * streaming pass into a temporary file next to it that then replaces the original. Only
+     * files with content that the streaming pass does not support are parsed into a document.
+     */
+    private static void processFile(String filename, Path base, CommandLine cmd,
+            FormattingListener listener, FormattingReport report, boolean checkOnly,
+            boolean lowMemory) throws Exception {
+        listener.fileStarted(filename);
+        byte[] input = lowMemory ? null : Files.readAllBytes(Paths.get(filename));
+        AndroidXmlOutputter outputter = createOutputter(cmd);
+        outputter.setFormattingListener(listener);
+        if (lowMemory) {
+            outputter.setParallelThreshold(0); // Would buffer the output
+        }
+
+        // Most files are already formatted, so do not build a document for them
+        FormattingVerifier.Result result;
+        try (InputStream xml = openInput(filename, input);
+                Reader content = openContent(filename, input)) {
+            result = FormattingVerifier.check(outputter, xml, content);
+        }
+        Document doc = null;
+        if (result == FormattingVerifier.Result.UNKNOWN
+                || (result == FormattingVerifier.Result.NOT_FORMATTED && !checkOnly
+                        && !lowMemory)) {
+            try (InputStream in = openInput(filename, input)) {
+                doc = new SAXBuilder().build(in);
+            }
+        }
+        listener.parseFinished(filename, doc);
+        if (result == FormattingVerifier.Result.UNKNOWN) {
+            try (Reader content = openContent(filename, input)) {
+                result = FormattingVerifier.isFormatted(outputter, doc, content)
+                        ? FormattingVerifier.Result.FORMATTED
+                        : FormattingVerifier.Result.NOT_FORMATTED;
+            }
+        }
+
+        if (result == FormattingVerifier.Result.FORMATTED) {
+            listener.renderFinished(filename);
+            report.add(Shard.displayPath(base, filename), FormattingReport.Status.FORMATTED);
+        } else if (checkOnly) {
+            listener.renderFinished(filename);
+            System.out.println("Not formatted: " + filename);
+            report.add(Shard.displayPath(base, filename), FormattingReport.Status.NOT_FORMATTED);
+        } else if (lowMemory) {
+            // Render next to the file and move it over the original, so it is never half-written
+            Path target = Paths.get(filename).toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), ".format-", ".xml.tmp");
+            try {
+                try (Writer out = createWriter(Files.newOutputStream(temp))) {
+                    if (doc != null) {
+                        outputter.output(doc, out);
+                    } else {
+                        // The check already read the whole file without unsupported content
+                        try (InputStream in = openInput(filename, null)) {
+                            new StreamingFormatter(outputter).format(in, out);
+                        }
+                    }
+                }
+                listener.renderFinished(filename);
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system, the temp file keeps the default permissions
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            report.add(Shard.displayPath(base, filename), FormattingReport.Status.REFORMATTED);
+        } else {
+            // Render completely before truncating the file, so errors do not destroy it
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(input.length);
+            try (Writer out = createWriter(stream)) {
+                outputter.output(doc, out);
+            }
+            listener.renderFinished(filename);
+            try (OutputStream out = new FileOutputStream(filename)) {
+                stream.writeTo(out);
+            }
+            report.add(Shard.displayPath(base, filename), FormattingReport.Status.REFORMATTED);
+        }
+        listener.fileFinished(filename);
+    }
+
+    /**
+     * Opens the file, or its content if it was read into memory.
+     */
+    private static InputStream openInput(String filename, byte[] input) throws IOException {
+        return input != null
+                ? new ByteArrayInputStream(input)
+                : new BufferedInputStream(new FileInputStream(filename));
+    }
+
+    private static Reader openContent(String filename, byte[] input) throws IOException {
+        return new InputStreamReader(openInput(filename, input), StandardCharsets.UTF_8);
+    }
+
+    private static AndroidXmlOutputter createOutputter(CommandLine cmd) {
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                Integer.parseInt(cmd.getOptionValue("indention", "4")),
+                Integer.parseInt(cmd.getOptionValue("attribute-indention", "4")),
+                cmd.getOptionValue("namespace-order", "android").split(","),
+                cmd.getOptionValue("attribute-order", "id,layout_width,layout_height")
+                        .split(","),
+                cmd.hasOption("attribute-sort"),
+                cmd.hasOption("namespace-sort"));
+        outputter.setParallelThreshold(
+                Integer.parseInt(cmd.getOptionValue("parallel-threshold", "0")));
+        return outputter;
+    }
+
+    private static Writer createWriter(OutputStream out) {
+        return new TrailingNewlineWriter(
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    private static void printUsage(Options options, String message) {
+        System.out.println(message);
+
+        String jarPath = new File(Main.class
+                .getProtectionDomain()
+                .getCodeSource()
+                .getLocation().toString()).getName();
+        new HelpFormatter().printHelp(jarPath + " [OPTIONS] <FILES>", options);
+        System.exit(1);
+    }
+
+    private static void printSummary(FormattingReport report) {
+        List<String> failed = report.failedFiles();
+        for (String filename : failed) {
+            System.out.println("Not formatted: " + filename);
         }
+        System.out.println(failed.size() + " of " + report.size() + " files not formatted");
     }
 }
@@ -0,0 +1,101 @@
+package com.bytehamster.androidxmlformatter;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes files in parallel, but only admits a file while the estimated memory of all files in
+ * progress stays within a budget. The largest files are started first, so they do not end up as
+ * the tail of the run. Files whose estimate exceeds the whole budget are processed one at a time
+ * on the low-memory path, which streams the file instead of building a JDOM tree. Only files with
+ * content that the streaming pass does not support still need their full estimate in heap.
+ */
+public class MemoryBudgetScheduler {
+    /**
+     * Estimated heap use per byte of input, covering the input, the JDOM tree and the output.
+     * Measured between 3.8 and 6.4 for layouts and between 4.8 and 9.8 for drawables.
+     */
+    static final int BYTES_PER_INPUT_BYTE = 10;
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    public interface Task {
+        void process(String filename, boolean lowMemory) throws Exception;
+    }
+
+    private final long budget;
+    private final int threads;
+
+    /**
+     * @param budget memory budget in bytes
+     * @param threads maximum number of files processed at the same time
+     */
+    public MemoryBudgetScheduler(long budget, int threads) {
+        if (budget <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Budget and threads must be positive");
+        }
+        this.budget = budget;
+        this.threads = threads;
+    }
+
+    static long estimateMemory(long fileSize) {
+        return fileSize * BYTES_PER_INPUT_BYTE;
+    }
+
+    public void run(List<String> filenames, Task task) throws Exception {
+        Map<String, Long> sizes = new HashMap<>();
+        for (String filename : filenames) {
+            sizes.put(filename, Files.size(Paths.get(filename)));
+        }
+        List<String> largestFirst = new ArrayList<>(filenames);
+        largestFirst.sort((f1, f2) -> Long.compare(sizes.get(f2), sizes.get(f1)));
+
+        int totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                budget / BYTES_PER_PERMIT));
+        Semaphore permits = new Semaphore(totalPermits);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (String filename : largestFirst) {
+                long estimate = estimateMemory(sizes.get(filename));
+                boolean lowMemory = estimate > budget;
+                int needed = lowMemory
+                        ? totalPermits
+                        : (int) Math.max(1, Math.min(totalPermits,
+                                (estimate + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT));
+                permits.acquire(needed);
+                if (failure.get() != null) {
+                    permits.release(needed);
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        task.process(filename, lowMemory);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        permits.release(needed);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.bytehamster.androidxmlformatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * One part of a formatting run that is split across several CI nodes. Files are assigned by their
+ * path relative to a base directory, by default the git top level, so every node computes the
+ * same split without sharing a file list.
+ */
+public class Shard {
+    final int index;
+    final int count;
+    final Path base;
+
+    /**
+     * @param index 1-based index of this shard
+     * @param count total number of shards
+     * @param base directory that all files are resolved against
+     */
+    public Shard(int index, int count, Path base) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+        this.base = base.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Parses the {@code i/n} notation used on the command line, e.g. {@code 2/4}.
+     */
+    public static Shard parse(String value, Path base) {
+        String[] parts = value.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard must be given as i/n: " + value);
+        }
+        try {
+            return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    base);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard must be given as i/n: " + value);
+        }
+    }
+
+    /**
+     * The top level of the git repository containing the working directory, or the working
+     * directory itself if it is not inside one.
+     */
+    public static Path defaultBase() {
+        Path workingDirectory = Paths.get("").toAbsolutePath();
+        for (Path dir = workingDirectory; dir != null; dir = dir.getParent()) {
+            if (Files.exists(dir.resolve(".git"))) {
+                return dir;
+            }
+        }
+        return workingDirectory;
+    }
+
+    /**
+     * Path of the file relative to the base, with forward slashes.
+     *
+     * @throws IllegalArgumentException if the file is outside of the base
+     */
+    static String relativePath(Path base, String filename) {
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        Path normalizedBase = base.toAbsolutePath().normalize();
+        if (!path.startsWith(normalizedBase)) {
+            throw new IllegalArgumentException("File is outside of the shard base "
+                    + normalizedBase + ": " + filename);
+        }
+        return normalizedBase.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Like {@link #relativePath(Path, String)}, but keeps files outside of the base absolute.
+     */
+    static String displayPath(Path base, String filename) {
+        try {
+            return relativePath(base, filename);
+        } catch (IllegalArgumentException e) {
+            return Paths.get(filename).toAbsolutePath().normalize().toString();
+        }
+    }
+
+    private static int hashedShard(String relativePath, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(relativePath.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % count);
+    }
+
+    /**
+     * Returns the files belonging to this shard, keeping their order. Files given more than once
+     * are only returned once.
+     */
+    public List<String> select(List<String> filenames) {
+        List<String> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String filename : filenames) {
+            String path = relativePath(base, filename);
+            if (seen.add(path) && hashedShard(path, count) == index - 1) {
+                result.add(filename);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #select(List)}, but balances the shards by file size. Starting with the
+     * largest, each file goes to the shard with the fewest bytes so far. Ties are broken by path,
+     * so all nodes agree as long as they see the same files.
+     */
+    public List<String> selectBalanced(List<String> filenames) throws IOException {
+        List<String> paths = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String filename : filenames) {
+            String path = relativePath(base, filename);
+            if (seen.add(path)) {
+                paths.add(path);
+                sizes.add(Files.size(Paths.get(filename)));
+            }
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < paths.size(); ++i) {
+            order.add(i);
+        }
+        order.sort((i1, i2) -> {
+            int bySize = Long.compare(sizes.get(i2), sizes.get(i1));
+            return bySize != 0 ? bySize : paths.get(i1).compareTo(paths.get(i2));
+        });
+
+        long[] shardSizes = new long[count];
+        Set<String> selected = new HashSet<>();
+        for (int i : order) {
+            int smallest = 0;
+            for (int shard = 1; shard < count; ++shard) {
+                if (shardSizes[shard] < shardSizes[smallest]) {
+                    smallest = shard;
+                }
+            }
+            shardSizes[smallest] += sizes.get(i);
+            if (smallest == index - 1) {
+                selected.add(paths.get(i));
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String filename : filenames) {
+            if (selected.remove(relativePath(base, filename))) {
+                result.add(filename);
+            }
+        }
+        return result;
+    }
+}
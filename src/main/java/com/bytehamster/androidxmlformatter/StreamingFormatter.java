@@ -0,0 +1,337 @@
+package com.bytehamster.androidxmlformatter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom.Verifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Formats a document in a single pass over a StAX stream, without building a JDOM tree. For the
+ * documents it supports, the output is the same as that of {@link AndroidXmlOutputter}: elements,
+ * attributes, prefixed namespace declarations, comments and elements that only contain text.
+ * Anything else, e.g. mixed content, CDATA, processing instructions, a DTD, a default namespace,
+ * xml:space, a byte order mark or an encoding other than UTF-8, raises
+ * {@link UnsupportedContentException}, and the caller has to fall back to the JDOM path. Output
+ * is only written once it is certain, so whatever was written before the exception is a prefix of
+ * what {@link AndroidXmlOutputter} would write.
+ */
+public class StreamingFormatter {
+    private static final String REPORT_CDATA_EVENT =
+            "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(
+            () -> {
+                XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+                factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+                if (factory.isPropertySupported(REPORT_CDATA_EVENT)) {
+                    factory.setProperty(REPORT_CDATA_EVENT, true);
+                }
+                return factory;
+            });
+
+    /**
+     * The document contains something that only the JDOM path can format.
+     */
+    public static class UnsupportedContentException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+
+    private static class OpenElement {
+        final String qualifiedName;
+        final int level;
+        final int namespaceScope;
+        boolean hasChildNodes = false;
+        StringBuilder text = new StringBuilder();
+
+        OpenElement(String qualifiedName, int level, int namespaceScope) {
+            this.qualifiedName = qualifiedName;
+            this.level = level;
+            this.namespaceScope = namespaceScope;
+        }
+    }
+
+    private final AndroidXmlOutputter outputter;
+    private final String indent;
+    private final String lineSeparator;
+    private final String attributeIndent;
+
+    public StreamingFormatter(AndroidXmlOutputter outputter) {
+        this.outputter = outputter;
+        this.indent = outputter.getFormat().getIndent();
+        this.lineSeparator = outputter.getFormat().getLineSeparator();
+        this.attributeIndent = StringUtils.repeat(" ", outputter.attributeIndention);
+    }
+
+    public void format(InputStream input, Writer out)
+            throws IOException, XMLStreamException, UnsupportedContentException {
+        PushbackInputStream in = new PushbackInputStream(input, 2);
+        int first = in.read();
+        int second = in.read();
+        if (first == 0xEF || first == 0xFE || first == 0xFF || first == 0 || second == 0) {
+            throw new UnsupportedContentException("Byte order mark or UTF-16 input");
+        }
+        if (second >= 0) {
+            in.unread(second);
+        }
+        if (first >= 0) {
+            in.unread(first);
+        }
+
+        XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+        try {
+            String encoding = reader.getCharacterEncodingScheme();
+            if (encoding != null && !StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding)) {
+                throw new UnsupportedContentException("Encoding " + encoding);
+            }
+            new Pass(reader, out).run();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isAllWhitespace(CharSequence text) {
+        for (int i = 0; i < text.length(); ++i) {
+            if (!Verifier.isXMLWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * State of formatting one document.
+     */
+    private class Pass {
+        private final XMLStreamReader reader;
+        private final Writer out;
+        private final Deque<OpenElement> openElements = new ArrayDeque<>();
+        private final List<String> namespacePrefixes = new ArrayList<>();
+        private final List<String> namespaceUris = new ArrayList<>();
+
+        Pass(XMLStreamReader reader, Writer out) {
+            this.reader = reader;
+            this.out = out;
+        }
+
+        void run() throws IOException, XMLStreamException, UnsupportedContentException {
+            out.write("<?xml version=\"1.0\" encoding=\"" + outputter.getFormat().getEncoding()
+                    + "\"?>");
+            out.write(lineSeparator);
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        text();
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        comment();
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        break;
+                    default:
+                        throw new UnsupportedContentException("Unsupported XML event " + event);
+                }
+            }
+            out.write(lineSeparator);
+        }
+
+        private void indent(int level) throws IOException {
+            for (int i = 0; i < level; ++i) {
+                out.write(indent);
+            }
+        }
+
+        private void attributeSeparator(int level) throws IOException {
+            if (outputter.attributeIndention > 0) {
+                out.write(lineSeparator);
+                indent(level);
+                out.write(attributeIndent);
+            } else {
+                out.write(" ");
+            }
+        }
+
+        private String namespaceUri(String prefix) {
+            for (int i = namespacePrefixes.size() - 1; i >= 0; --i) {
+                if (namespacePrefixes.get(i).equals(prefix)) {
+                    return namespaceUris.get(i);
+                }
+            }
+            return null;
+        }
+
+        private void printNamespace(String prefix, String uri) throws IOException {
+            if (!uri.equals(namespaceUri(prefix))) {
+                out.write("xmlns:");
+                out.write(prefix);
+                out.write("=\"");
+                outputter.printAttributeValue(out, uri);
+                out.write("\"");
+                namespacePrefixes.add(prefix);
+                namespaceUris.add(uri);
+            }
+        }
+
+        /**
+         * Starts a child node of the innermost open element, or does nothing at document level.
+         */
+        private void startChildNode() throws IOException, UnsupportedContentException {
+            OpenElement parent = openElements.peek();
+            if (parent == null) {
+                return;
+            }
+            if (!parent.hasChildNodes) {
+                if (!isAllWhitespace(parent.text)) {
+                    throw new UnsupportedContentException("Mixed content");
+                }
+                out.write(">");
+                out.write(lineSeparator);
+                out.write(lineSeparator);
+                parent.hasChildNodes = true;
+                parent.text = null;
+            } else {
+                out.write(lineSeparator);
+            }
+            indent(openElements.size());
+        }
+
+        private void startElement() throws IOException, UnsupportedContentException {
+            startChildNode();
+            int level = openElements.size();
+            String prefix = nonNull(reader.getPrefix());
+            String uri = nonNull(reader.getNamespaceURI());
+            if (prefix.isEmpty() && !uri.isEmpty()) {
+                throw new UnsupportedContentException("Default namespace");
+            } else if (prefix.equals(XMLConstants.XML_NS_PREFIX)) {
+                throw new UnsupportedContentException("Element in the xml namespace");
+            }
+            String qualifiedName = qualifiedName(prefix, reader.getLocalName());
+            out.write("<");
+            out.write(qualifiedName);
+            int namespaceScope = namespacePrefixes.size();
+            if (!prefix.isEmpty()) {
+                printNamespace(prefix, uri);
+            }
+
+            for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                String declaredPrefix = nonNull(reader.getNamespacePrefix(i));
+                String declaredUri = nonNull(reader.getNamespaceURI(i));
+                if (declaredPrefix.isEmpty()) {
+                    throw new UnsupportedContentException("Default namespace declaration");
+                }
+                if (declaredPrefix.equals(prefix) && declaredUri.equals(uri)) {
+                    continue; // Printed as the element's namespace
+                }
+                attributeSeparator(level);
+                printNamespace(declaredPrefix, declaredUri);
+            }
+
+            List<Integer> attributes = new ArrayList<>();
+            for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                if (XMLConstants.XML_NS_PREFIX.equals(reader.getAttributePrefix(i))) {
+                    throw new UnsupportedContentException("Attribute in the xml namespace");
+                }
+                attributes.add(i);
+            }
+            Collections.sort(attributes, (i1, i2) -> outputter.compareAttributes(
+                    nonNull(reader.getAttributePrefix(i1)), reader.getAttributeLocalName(i1),
+                    nonNull(reader.getAttributePrefix(i2)), reader.getAttributeLocalName(i2)));
+            for (int i : attributes) {
+                attributeSeparator(level);
+                out.write(qualifiedName(nonNull(reader.getAttributePrefix(i)),
+                        reader.getAttributeLocalName(i)));
+                out.write("=\"");
+                outputter.printAttributeValue(out, reader.getAttributeValue(i));
+                out.write("\"");
+            }
+
+            openElements.push(new OpenElement(qualifiedName, level, namespaceScope));
+        }
+
+        private void endElement() throws IOException, UnsupportedContentException {
+            OpenElement element = openElements.pop();
+            if (!element.hasChildNodes) {
+                if (isAllWhitespace(element.text)) {
+                    out.write(" />");
+                } else {
+                    out.write(">");
+                    out.write(lineSeparator);
+                    out.write(outputter.escapeElementEntities(element.text.toString().trim()));
+                    out.write("</");
+                    out.write(element.qualifiedName);
+                    out.write(">");
+                }
+            } else {
+                out.write(lineSeparator);
+                indent(element.level);
+                out.write("</");
+                out.write(element.qualifiedName);
+                out.write(">");
+            }
+
+            while (namespacePrefixes.size() > element.namespaceScope) {
+                namespacePrefixes.remove(namespacePrefixes.size() - 1);
+                namespaceUris.remove(namespaceUris.size() - 1);
+            }
+            out.write(lineSeparator);
+            if (openElements.isEmpty()) {
+                out.write(lineSeparator);
+            }
+        }
+
+        private void text() throws UnsupportedContentException {
+            OpenElement element = openElements.peek();
+            if (element != null && !element.hasChildNodes) {
+                element.text.append(reader.getTextCharacters(), reader.getTextStart(),
+                        reader.getTextLength());
+            } else if (!isAllWhitespace(reader.getText())) {
+                throw new UnsupportedContentException("Mixed content");
+            }
+        }
+
+        private void comment() throws IOException, UnsupportedContentException {
+            startChildNode();
+            out.write("<!--");
+            out.write(reader.getText());
+            out.write("-->");
+            if (openElements.isEmpty()) {
+                out.write(lineSeparator);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.bytehamster.androidxmlformatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Ends the output with exactly one line break. {@link AndroidXmlOutputter} emits several line
+ * breaks after the root element; they are held back until more content follows, and collapsed
+ * into one when the writer is closed. Everything else is passed through unbuffered.
+ */
+public class TrailingNewlineWriter extends Writer {
+    private static final char NEWLINE = '\n';
+    private final Writer out;
+    private int pendingNewlines = 0;
+
+    public TrailingNewlineWriter(Writer out) {
+        this.out = out;
+    }
+
+    private void writePendingNewlines() throws IOException {
+        for (; pendingNewlines > 0; --pendingNewlines) {
+            out.write(NEWLINE);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (c == NEWLINE) {
+            ++pendingNewlines;
+        } else {
+            writePendingNewlines();
+            out.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        while (end > off && cbuf[end - 1] == NEWLINE) {
+            --end;
+        }
+        if (end > off) {
+            writePendingNewlines();
+            out.write(cbuf, off, end - off);
+        }
+        pendingNewlines += off + len - end;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int end = off + len;
+        while (end > off && str.charAt(end - 1) == NEWLINE) {
+            --end;
+        }
+        if (end > off) {
+            writePendingNewlines();
+            out.write(str, off, end - off);
+        }
+        pendingNewlines += off + len - end;
+    }
+
+    /**
+     * Flushes everything except the held back line breaks.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingNewlines > 0) {
+            pendingNewlines = 1;
+            writePendingNewlines();
+        }
+        out.close();
+    }
+}
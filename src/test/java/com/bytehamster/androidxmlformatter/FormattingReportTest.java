@@ -0,0 +1,86 @@
+package com.bytehamster.androidxmlformatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class FormattingReportTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FormattingReport readWritten(int index, int count, String... failed)
+            throws Exception {
+        FormattingReport report = new FormattingReport(new Shard(index, count, tempDir));
+        report.add("res/layout/shard_" + index + ".xml", FormattingReport.Status.FORMATTED);
+        for (String filename : failed) {
+            report.add(filename, FormattingReport.Status.NOT_FORMATTED);
+        }
+        Path path = tempDir.resolve("shard-" + index + "-" + count + ".txt");
+        report.write(path);
+        return FormattingReport.read(path);
+    }
+
+    @Test
+    @DisplayName("Reports keep their shard and base when written and read")
+    void testWriteAndRead() throws Exception {
+        FormattingReport report = readWritten(2, 4, "res/values/strings.xml");
+        assertEquals(2, report.shard.index);
+        assertEquals(4, report.shard.count);
+        assertEquals(tempDir.toAbsolutePath().normalize(), report.shard.base);
+        assertEquals(2, report.size());
+        assertEquals(Collections.singletonList("res/values/strings.xml"), report.failedFiles());
+    }
+
+    @Test
+    @DisplayName("Reports without a valid shard header are rejected")
+    void testMissingHeader() throws Exception {
+        Path path = tempDir.resolve("report.txt");
+        Files.write(path, Arrays.asList("FORMATTED\tmain.xml"), StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> FormattingReport.read(path));
+        Files.write(path, Arrays.asList("# shard 5/4 base /work", "FORMATTED\tmain.xml"),
+                StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> FormattingReport.read(path));
+        Files.write(path, Collections.emptyList(), StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> FormattingReport.read(path));
+    }
+
+    @Test
+    @DisplayName("Merging the reports of all shards combines their results")
+    void testMerge() throws Exception {
+        List<FormattingReport> reports = new ArrayList<>();
+        reports.add(readWritten(3, 3));
+        reports.add(readWritten(1, 3, "res/values/strings.xml"));
+        reports.add(readWritten(2, 3));
+
+        FormattingReport merged = FormattingReport.merge(reports);
+        assertEquals(4, merged.size());
+        assertEquals(Collections.singletonList("res/values/strings.xml"), merged.failedFiles());
+        assertFalse(merged.passed());
+    }
+
+    @Test
+    @DisplayName("Merging fails if shards are missing, duplicated or disagree on the count")
+    void testMergeIncomplete() throws Exception {
+        assertThrows(IllegalArgumentException.class,
+                () -> FormattingReport.merge(Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class,
+                () -> FormattingReport.merge(Arrays.asList(readWritten(1, 3), readWritten(3, 3))));
+        assertThrows(IllegalArgumentException.class, () -> FormattingReport.merge(
+                Arrays.asList(readWritten(1, 2), readWritten(2, 2), readWritten(2, 2))));
+        assertThrows(IllegalArgumentException.class,
+                () -> FormattingReport.merge(Arrays.asList(readWritten(1, 2), readWritten(2, 3))));
+        assertTrue(FormattingReport.merge(Collections.singletonList(readWritten(1, 1))).passed());
+    }
+}
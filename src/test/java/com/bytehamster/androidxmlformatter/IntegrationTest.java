@@ -2,7 +2,9 @@ package com.bytehamster.androidxmlformatter;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import org.jdom.Attribute;
 import org.jdom.Document;
+import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,6 +13,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Integration tests that verify XML formatting with various options by comparing input XML files
@@ -295,4 +300,196 @@ class IntegrationTest {
                 textViewPos > linearLayoutStart && textViewPos < linearLayoutEnd,
                 "TextView should be inside LinearLayout");
     }
+
+    @Test
+    @DisplayName("Long attribute values are escaped like escapeAttributeEntities")
+    void testLongAttributeValue() throws Exception {
+        StringBuilder pathData = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            pathData.append("M").append(i).append(",12.5L3.25,").append(i % 7);
+        }
+        pathData.append(" & \"<quoted>\"\tend");
+
+        Document inputDoc = new Document(new Element("path"));
+        inputDoc.getRootElement().setAttribute("pathData", pathData.toString());
+
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+
+        String result = formatDocument(outputter, inputDoc);
+
+        String escaped = outputter.escapeAttributeEntities(pathData.toString());
+        assertTrue(
+                result.contains("pathData=\"" + escaped + "\" />"),
+                "Attribute value should be escaped as by escapeAttributeEntities");
+        assertTrue(escaped.endsWith(" &amp; &quot;&lt;quoted&gt;&quot;&#x9;end"));
+    }
+
+    @Test
+    @DisplayName("Formatting listener is notified for every element")
+    void testFormattingListener() throws Exception {
+        Document inputDoc = parseResource(INTEGRATION_DIR + "default_options" + INPUT_SUFFIX);
+
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+        List<String> rendered = new ArrayList<>();
+        List<String> firstAttributes = new ArrayList<>();
+        outputter.setFormattingListener(new FormattingListener() {
+            @Override
+            public void attributesReordered(Element element, List<Attribute> attributes) {
+                firstAttributes.add(attributes.get(0).getName());
+            }
+
+            @Override
+            public void elementRendered(Element element, int level) {
+                rendered.add(element.getName() + "@" + level);
+            }
+        });
+
+        formatDocument(outputter, inputDoc);
+
+        assertEquals(Arrays.asList("Button@1", "TextView@1", "LinearLayout@0"), rendered);
+        assertEquals(Arrays.asList("id", "id", "id"), firstAttributes);
+    }
+
+    @Test
+    @DisplayName("Verifier accepts formatted files and rejects unformatted ones")
+    void testFormattingVerifier() throws Exception {
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+
+        String expected = loadResource(INTEGRATION_DIR + "default_options" + EXPECTED_SUFFIX);
+        Document expectedDoc = parseResource(INTEGRATION_DIR + "default_options" + EXPECTED_SUFFIX);
+        assertTrue(FormattingVerifier.isFormatted(outputter, expectedDoc, expected));
+        assertFalse(FormattingVerifier.isFormatted(outputter, expectedDoc, expected + "\n"));
+        assertFalse(FormattingVerifier.isFormatted(outputter, expectedDoc,
+                expected.substring(0, expected.length() - 1)));
+
+        String input = loadResource(INTEGRATION_DIR + "default_options" + INPUT_SUFFIX);
+        Document inputDoc = parseResource(INTEGRATION_DIR + "default_options" + INPUT_SUFFIX);
+        assertFalse(FormattingVerifier.isFormatted(outputter, inputDoc, input));
+    }
+
+    @Test
+    @DisplayName("Streamed output ends with exactly one line break")
+    void testTrailingNewline() throws Exception {
+        Document inputDoc = parseResource(INTEGRATION_DIR + "default_options" + INPUT_SUFFIX);
+        String expected = loadResource(INTEGRATION_DIR + "default_options" + EXPECTED_SUFFIX);
+
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+
+        StringWriter writer = new StringWriter();
+        try (TrailingNewlineWriter out = new TrailingNewlineWriter(writer)) {
+            outputter.output(inputDoc, out);
+        }
+
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    @DisplayName("Parallel rendering produces the same output as sequential rendering")
+    void testParallelRendering() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<resources xmlns:tools=\"http://schemas.android.com/tools\">");
+        for (int i = 0; i < 2000; i++) {
+            if (i % 100 == 0) {
+                xml.append("<!-- Section ").append(i).append(" -->");
+            }
+            xml.append("\n  <string name=\"s").append(i).append("\" tools:ignore=\"Typo\">")
+                    .append("Text &amp; ").append(i).append("</string>");
+            if (i % 250 == 0) {
+                xml.append("<plurals name=\"p").append(i).append("\">")
+                        .append("<item quantity=\"one\">One</item>")
+                        .append("<item quantity=\"other\">Many</item></plurals>");
+            }
+        }
+        xml.append("</resources>");
+        Document inputDoc = new SAXBuilder().build(new java.io.StringReader(xml.toString()));
+
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+        String sequential = formatDocument(outputter, inputDoc);
+        outputter.setParallelThreshold(1);
+        String parallel = formatDocument(outputter, inputDoc);
+
+        assertEquals(sequential, parallel);
+        assertTrue(FormattingVerifier.isFormatted(outputter, inputDoc, sequential.trim() + "\n"));
+        assertFalse(FormattingVerifier.isFormatted(outputter, inputDoc, sequential.trim()));
+    }
+
+    @Test
+    @DisplayName("Parallel rendering calls the listener in order on the calling thread")
+    void testFormattingListenerWithParallelRendering() throws Exception {
+        StringBuilder xml = new StringBuilder("<resources>");
+        for (int i = 0; i < 500; i++) {
+            xml.append("<string name=\"s").append(i).append("\">Text</string>");
+        }
+        xml.append("</resources>");
+        Document inputDoc = new SAXBuilder().build(new java.io.StringReader(xml.toString()));
+
+        AndroidXmlOutputter outputter = new AndroidXmlOutputter(
+                4,
+                4,
+                new String[] { "android" },
+                new String[] { "id", "layout_width", "layout_height" },
+                false,
+                false);
+        Thread callingThread = Thread.currentThread();
+        List<String> rendered = new ArrayList<>();
+        List<String> reordered = new ArrayList<>();
+        outputter.setFormattingListener(new FormattingListener() {
+            @Override
+            public void attributesReordered(Element element, List<Attribute> attributes) {
+                assertSame(callingThread, Thread.currentThread());
+                reordered.add(element.getAttributeValue("name"));
+            }
+
+            @Override
+            public void elementRendered(Element element, int level) {
+                assertSame(callingThread, Thread.currentThread());
+                rendered.add(element.getAttributeValue("name"));
+            }
+        });
+        outputter.setParallelThreshold(1);
+
+        formatDocument(outputter, inputDoc);
+
+        List<String> children = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            children.add("s" + i);
+        }
+        List<String> expectedReordered = new ArrayList<>();
+        expectedReordered.add(null); // Root element, before its children
+        expectedReordered.addAll(children);
+        List<String> expectedRendered = new ArrayList<>(children);
+        expectedRendered.add(null); // Root element, after its children
+        assertEquals(expectedReordered, reordered);
+        assertEquals(expectedRendered, rendered);
+    }
 }
@@ -0,0 +1,83 @@
+package com.bytehamster.androidxmlformatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MemoryBudgetSchedulerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String createFile(String name, int size) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.write(file, new byte[size]);
+        return file.toString();
+    }
+
+    @Test
+    @DisplayName("Largest files start first, oversized files take the low-memory path")
+    void testOrderAndLowMemory() throws Exception {
+        String small = createFile("small.xml", 10);
+        String medium = createFile("medium.xml", 1000);
+        String huge = createFile("huge.xml", 100000);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        List<String> lowMemory = Collections.synchronizedList(new ArrayList<>());
+
+        new MemoryBudgetScheduler(MemoryBudgetScheduler.estimateMemory(1000), 1)
+                .run(Arrays.asList(small, huge, medium), (filename, isLowMemory) -> {
+                    started.add(filename);
+                    if (isLowMemory) {
+                        lowMemory.add(filename);
+                    }
+                });
+
+        assertEquals(Arrays.asList(huge, medium, small), started);
+        assertEquals(Collections.singletonList(huge), lowMemory);
+    }
+
+    @Test
+    @DisplayName("Files in progress stay within the memory budget")
+    void testBudgetIsRespected() throws Exception {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            filenames.add(createFile("file_" + i + ".xml", 64 * 1024));
+        }
+        long fileCost = MemoryBudgetScheduler.estimateMemory(64 * 1024);
+        long budget = 3 * fileCost;
+        AtomicLong inProgress = new AtomicLong();
+        AtomicLong maxInProgress = new AtomicLong();
+
+        new MemoryBudgetScheduler(budget, 8).run(filenames, (filename, isLowMemory) -> {
+            assertFalse(isLowMemory);
+            long current = inProgress.addAndGet(fileCost);
+            maxInProgress.accumulateAndGet(current, Math::max);
+            Thread.sleep(5);
+            inProgress.addAndGet(-fileCost);
+        });
+
+        assertTrue(maxInProgress.get() <= budget, "Budget exceeded: " + maxInProgress.get());
+    }
+
+    @Test
+    @DisplayName("Failures are rethrown after the run")
+    void testFailureIsRethrown() throws Exception {
+        String file = createFile("broken.xml", 10);
+        Exception e = assertThrows(IllegalStateException.class,
+                () -> new MemoryBudgetScheduler(1024 * 1024, 2).run(
+                        Collections.singletonList(file), (filename, isLowMemory) -> {
+                            throw new IllegalStateException("broken");
+                        }));
+        assertEquals("broken", e.getMessage());
+    }
+}
@@ -0,0 +1,119 @@
+package com.bytehamster.androidxmlformatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class ShardTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<String> createFiles(int count) throws Exception {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = tempDir.resolve("layout_" + i + ".xml");
+            Files.write(file, new byte[(i * 37) % 1000 + 1]);
+            filenames.add(file.toString());
+        }
+        return filenames;
+    }
+
+    private void assertPartition(List<String> filenames, boolean balanced) throws Exception {
+        Set<String> seen = new HashSet<>();
+        for (int i = 1; i <= 4; i++) {
+            Shard shard = new Shard(i, 4, tempDir);
+            List<String> selected = balanced
+                    ? shard.selectBalanced(filenames)
+                    : shard.select(filenames);
+            assertEquals(selected, balanced
+                    ? shard.selectBalanced(filenames)
+                    : shard.select(filenames), "Selection should be deterministic");
+            for (String filename : selected) {
+                assertTrue(seen.add(filename), "File in more than one shard: " + filename);
+            }
+        }
+        assertEquals(new HashSet<>(filenames), seen, "Every file should be in one shard");
+    }
+
+    @Test
+    @DisplayName("Shards by path cover every file exactly once")
+    void testSelectByPath() throws Exception {
+        assertPartition(createFiles(100), false);
+    }
+
+    @Test
+    @DisplayName("Shards by size cover every file exactly once and are balanced")
+    void testSelectBySize() throws Exception {
+        List<String> filenames = createFiles(100);
+        assertPartition(filenames, true);
+
+        long total = 0;
+        long largestShard = 0;
+        for (String filename : filenames) {
+            total += Files.size(Paths.get(filename));
+        }
+        for (int i = 1; i <= 4; i++) {
+            long size = 0;
+            for (String filename : new Shard(i, 4, tempDir).selectBalanced(filenames)) {
+                size += Files.size(Paths.get(filename));
+            }
+            largestShard = Math.max(largestShard, size);
+        }
+        assertTrue(largestShard - total / 4 <= 1000, "Shards should differ by at most one file");
+    }
+
+    @Test
+    @DisplayName("Shard notation is validated")
+    void testParse() {
+        Shard shard = Shard.parse("2/4", tempDir);
+        assertEquals(2, shard.index);
+        assertEquals(4, shard.count);
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("0/4", tempDir));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("5/4", tempDir));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("2", tempDir));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("a/b", tempDir));
+    }
+
+    @Test
+    @DisplayName("Files outside of the base are rejected")
+    void testOutsideBase() throws Exception {
+        List<String> filenames = createFiles(1);
+        Shard shard = new Shard(1, 2, tempDir.resolve("subdir"));
+        assertThrows(IllegalArgumentException.class, () -> shard.select(filenames));
+        assertThrows(IllegalArgumentException.class, () -> shard.selectBalanced(filenames));
+    }
+
+    @Test
+    @DisplayName("Both modes return files given more than once only once")
+    void testDuplicates() throws Exception {
+        List<String> filenames = createFiles(20);
+        List<String> withDuplicates = new ArrayList<>(filenames);
+        withDuplicates.addAll(filenames);
+        withDuplicates.add(tempDir.resolve("subdir/../layout_0.xml").toString());
+        for (int i = 1; i <= 2; i++) {
+            Shard shard = new Shard(i, 2, tempDir);
+            assertEquals(shard.select(filenames), shard.select(withDuplicates));
+            assertEquals(shard.selectBalanced(filenames), shard.selectBalanced(withDuplicates));
+        }
+    }
+
+    @Test
+    @DisplayName("Paths are relative to the base, independent of how they are given")
+    void testRelativePath() {
+        assertEquals("res/layout/main.xml",
+                Shard.relativePath(tempDir, tempDir.resolve("res/layout/main.xml").toString()));
+        assertEquals("res/layout/main.xml", Shard.relativePath(tempDir,
+                tempDir.resolve("res/values/../layout/main.xml").toString()));
+    }
+}
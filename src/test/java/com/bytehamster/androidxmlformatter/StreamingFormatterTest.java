@@ -0,0 +1,165 @@
+package com.bytehamster.androidxmlformatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.jdom.input.SAXBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests that the streaming formatter writes the same output as {@link AndroidXmlOutputter}, and
+ * that it refuses content it does not model.
+ */
+class StreamingFormatterTest {
+
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n";
+
+    private static final String[] RESOURCES = {
+        "attribute_sort", "combined_options", "custom_attribute_indention",
+        "custom_attribute_order", "custom_indention", "custom_namespace_order",
+        "default_options", "namespace_sort",
+    };
+
+    private static AndroidXmlOutputter[] outputters() {
+        return new AndroidXmlOutputter[] {
+            new AndroidXmlOutputter(4, 4, new String[] { "android" },
+                    new String[] { "id", "layout_width", "layout_height" }, false, false),
+            new AndroidXmlOutputter(2, 6, new String[] {}, new String[] {}, true, true),
+            new AndroidXmlOutputter(0, 0, new String[] { "tools", "app", "android" },
+                    new String[] { "text" }, false, true),
+        };
+    }
+
+    private byte[] loadResource(String path) throws Exception {
+        try (InputStream is = getClass().getResourceAsStream(path)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Resource not found: " + path);
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int bytesRead;
+            byte[] data = new byte[1024];
+            while ((bytesRead = is.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, bytesRead);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private static String formatWithJdom(AndroidXmlOutputter outputter, byte[] xml)
+            throws Exception {
+        StringWriter writer = new StringWriter();
+        try (Writer out = new TrailingNewlineWriter(writer)) {
+            outputter.output(new SAXBuilder().build(new ByteArrayInputStream(xml)), out);
+        }
+        return writer.toString();
+    }
+
+    private static String formatStreaming(AndroidXmlOutputter outputter, byte[] xml)
+            throws Exception {
+        StringWriter writer = new StringWriter();
+        try (Writer out = new TrailingNewlineWriter(writer)) {
+            new StreamingFormatter(outputter).format(new ByteArrayInputStream(xml), out);
+        }
+        return writer.toString();
+    }
+
+    private static void assertSameOutput(byte[] xml, FormattingVerifier.Result checkResult)
+            throws Exception {
+        for (AndroidXmlOutputter outputter : outputters()) {
+            String expected = formatWithJdom(outputter, xml);
+            assertEquals(expected, formatStreaming(outputter, xml));
+            assertEquals(checkResult, check(outputter, expected));
+        }
+    }
+
+    private static void assertUnsupported(String xml) {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        AndroidXmlOutputter outputter = outputters()[0];
+        assertThrows(StreamingFormatter.UnsupportedContentException.class,
+                () -> formatStreaming(outputter, bytes));
+        assertEquals(FormattingVerifier.Result.UNKNOWN, check(outputter, xml));
+    }
+
+    private static FormattingVerifier.Result check(AndroidXmlOutputter outputter, String xml) {
+        return check(outputter, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static FormattingVerifier.Result check(AndroidXmlOutputter outputter, byte[] xml) {
+        try {
+            return FormattingVerifier.check(outputter, new ByteArrayInputStream(xml),
+                    new StringReader(new String(xml, StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Integration inputs and outputs are formatted like the JDOM outputter does")
+    void testIntegrationResources() throws Exception {
+        for (String name : RESOURCES) {
+            assertSameOutput(loadResource("/integration/" + name + "_input.xml"),
+                    FormattingVerifier.Result.FORMATTED);
+            assertSameOutput(loadResource("/integration/" + name + "_expected.xml"),
+                    FormattingVerifier.Result.FORMATTED);
+        }
+    }
+
+    @Test
+    @DisplayName("Comments, text, namespaces and escaping are formatted like the JDOM outputter")
+    void testEdgeCases() throws Exception {
+        assertSameOutput(("<!-- Header -->\n<resources"
+                + " xmlns:tools=\"http://schemas.android.com/tools\">\n"
+                + "  <!-- Strings -->\n"
+                + "  <string name=\"a\" tools:ignore=\"Typo\">  One &amp; &lt;two&gt; \r\n"
+                + "three&#13;</string>\n"
+                + "  <string name=\"b\">   </string><string name=\"c\"/>\n"
+                + "  <plurals name=\"p\"><!--x--><item quantity=\"one\">One</item></plurals>\n"
+                + "</resources>\n<!-- Footer -->").getBytes(StandardCharsets.UTF_8),
+                FormattingVerifier.Result.FORMATTED);
+        // The outputter writes no space before the namespace of a prefixed element, so its
+        // output does not parse again and only the JDOM path can decide
+        assertSameOutput(("<a:root xmlns:a=\"urn:a\" xmlns:b=\"urn:b\" b:x=\"1\" a:y=\"2\" z=\"3\">"
+                + "<a:child xmlns:a=\"urn:a\" xmlns:b=\"urn:other\" b:x=\"&#10;&#9;&quot;\"/>"
+                + "<b:child xmlns:c=\"urn:c\"><c:leaf c:v=\"\u00e4\uD83D\uDE00\"/></b:child>"
+                + "</a:root>").getBytes(StandardCharsets.UTF_8),
+                FormattingVerifier.Result.UNKNOWN);
+    }
+
+    @Test
+    @DisplayName("Content the streaming formatter does not model is left to the JDOM path")
+    void testUnsupportedContent() {
+        assertUnsupported(DECLARATION + "<a><![CDATA[x]]></a>");
+        assertUnsupported(DECLARATION + "<a><?target data?></a>");
+        assertUnsupported(DECLARATION + "<a>text<b/></a>");
+        assertUnsupported(DECLARATION + "<a><b/>text</a>");
+        assertUnsupported(DECLARATION + "<a xml:space=\"preserve\"> x </a>");
+        assertUnsupported(DECLARATION + "<a xmlns=\"urn:a\"/>");
+        assertUnsupported(DECLARATION + "<!DOCTYPE a><a/>");
+        assertUnsupported("\uFEFF<a/>");
+        assertUnsupported("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>");
+    }
+
+    @Test
+    @DisplayName("Streaming check rejects unformatted files and malformed XML is left to JDOM")
+    void testCheck() throws Exception {
+        AndroidXmlOutputter outputter = outputters()[0];
+        byte[] input = loadResource("/integration/default_options_input.xml");
+        assertEquals(FormattingVerifier.Result.NOT_FORMATTED, check(outputter, input));
+
+        String expected = new String(loadResource("/integration/default_options_expected.xml"),
+                StandardCharsets.UTF_8);
+        assertEquals(FormattingVerifier.Result.FORMATTED, check(outputter, expected));
+        assertEquals(FormattingVerifier.Result.NOT_FORMATTED, check(outputter, expected + "\n"));
+        assertEquals(FormattingVerifier.Result.NOT_FORMATTED,
+                check(outputter, expected.substring(0, expected.length() - 1)));
+        assertEquals(FormattingVerifier.Result.UNKNOWN, check(outputter, "<a><b></a>"));
+    }
+}